@@ -1,31 +1,15 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
 import java.util.Arrays;
 import java.util.List;
 
-class Trip {
-    private final Map<String, List<Integer>> map = new HashMap<>();
-
-    Trip() {}
-    void addStopToTrip(String tripID, int stopIndex, int stopID) {
-        List<Integer> arrayList = new ArrayList<>(10);
-        if (!map.containsKey(tripID)) {
-            arrayList.add(stopIndex, stopID);
-            map.put(tripID, arrayList);
-            return;
-        }
-        arrayList = map.get(tripID);
-        arrayList.add(stopIndex, stopID);
-        map.replace(tripID, arrayList);
-    }
-
-    Map<String, List<Integer>> getMap() {
-        return this.map;
-    }
-}
-
 // source: https://algs4.cs.princeton.edu/52trie/TST.java.html
 class TST<Value> {
     private int n;              // size
@@ -265,182 +249,45 @@ class TST<Value> {
      */
 }
 
+public class Algorithm2FinalProject {
+    static final String PATH_STOP_TIMES = "src/stop_times.txt";
+    static final String PATH_STOPS = "src/stops.txt";
+    static final String PATH_TRANSFERS = "src/transfers.txt";
 
-class DGraph {
-
-    int v;
-    int e;
-    List<List<Vertex>> edges = new ArrayList<>();
-    // List faster than ArrayList when in declaration?
-
-    DGraph(int v, int e) {
-        this.v = v;
-        this.e = e;
-
-        for (int i = 0; i < v; i++) {
-            edges.add(new ArrayList<>());
-        }
-    }
-
-    static class Vertex implements Comparator<Vertex> {
-        int index;
-        double weight;
+    // run with -Dstoptimes.offheap=true to route and search from StopTimesColumns,
+    // and -Dstoptimes.cache=<file> to keep those columns in a mapped file between runs
+    static final boolean OFF_HEAP_STOP_TIMES = Boolean.getBoolean("stoptimes.offheap");
+    static final String PATH_STOP_TIMES_CACHE = System.getProperty("stoptimes.cache");
+    private static StopTimesColumns stopTimesColumns;
 
-        Vertex(int index, double weight) {
-            this.index = index;
-            this.weight = weight;
-        }
+    static final double WALKING_METRES_PER_SECOND = 1.4;
+    static final double MAX_WALK_METRES = 800;
+    static final int NEARBY_STOPS = 5;
+    static final int NEXT_DEPARTURES = 10;
+    static final int MAX_SERVICE_HOURS = 72;
+    private static StopsGrid stopsGrid;
 
-        public Vertex() {
-        }
-
-        public int compare(Vertex e1, Vertex e2) {
-            return Double.compare(e1.weight, e2.weight);
-        }
+    static StopsGrid getStopsGrid() throws IOException {
+        if (stopsGrid == null) stopsGrid = StopsGrid.load(PATH_STOPS);
+        return stopsGrid;
     }
 
-    void addEdge(int start, int end, double weight) {
-        this.edges.get(start).add(new Vertex(end, weight));
-    }
+    private static DepartureBoard departureBoard;
 
-    double getWeight(int start, int end) {
-        List<Vertex> temp = this.edges.get(start);
-        for (Vertex edge: temp) if (edge.index == end) return edge.weight;
-        return Double.MAX_VALUE;
+    static DepartureBoard getDepartureBoard() throws IOException {
+        if (departureBoard == null)
+            departureBoard = OFF_HEAP_STOP_TIMES ? DepartureBoard.from(getStopTimesColumns()) : DepartureBoard.load(PATH_STOP_TIMES);
+        return departureBoard;
     }
 
+    // run with -Dsssp.parallel=true to route with delta-stepping on the common fork join pool
+    static final boolean PARALLEL_SSSP = Boolean.getBoolean("sssp.parallel");
+    private static DGraph networkGraph;
 
-    String[] Dijkstra(int v0, int v1) {
-        int v = this.v;
-        boolean[] addedToPQ = new boolean[v];
-        double[] dist = new double[v];  // dist[i] = min distance between v0 and vi
-        int[] prev = new int[v];
-
-        // initialize the visited array as all false and get distance from v0 to every other vertex
-
-        Arrays.fill(addedToPQ, false);
-        addedToPQ[v0] = true;
-        Arrays.fill(dist, Double.MAX_VALUE);
-        dist[v0] = 0;
-        Arrays.fill(prev, -1);
-        prev[v0] = v0;
-
-        /*
-        // initialize the visited array as all false and get distance from v0 to every other vertex
-        for (int i = 0; i < v; i++) {
-            visited[i] = false;
-            dist[i] = this.graph.dist[v0][i];
-        }
-        dist[v0] = 0;
-        visited[v0] = true;
-
-
-         outer loop i has not really meaning we just do (n-1) times of loops (n = #(V)) since we already know which the started vertex v0 is
-         the next step is a j loop traversing every vertex to find which unvisited vertex has min distance to v0
-         and another j loop to relax
-         Q: What is relax?
-         A: We find the unvisited vertex u with min distance and see if the path v0 -> u -> j has less distance than v0 -> j directly
-            (j is loop variable from 0 to n-1). In other words, take a 'shortcut'.
-
-        for (int i = 1; i < v; i++) {
-            int u = v0;
-            double min = INF;
-            for (int j = 0; j < v; j++)
-                if (!visited[j] && dist[j] < min) {  // update if the current vertex is not visited and it has the min distance
-                    u = j;
-                    min = dist[j];
-                }
-
-            visited[u] = true;
-            // relax
-            for (int j = 0; j < v; j++) {
-                if (!visited[j] && this.graph.dist[u][j] < INF) {
-                    dist[j] = Double.min(dist[j], this.graph.dist[u][j] + dist[u]);
-                }
-            }
-        }
-        // a very very slow version
-         */
-
-        /*
-        // a prototype with priority queue involved but with mistakes
-        PriorityQueue<Vertex> vertexPQ = new PriorityQueue<>(v, new Vertex());
-        vertexPQ.add(new Vertex(v0, 0));
-        while(!vertexPQ.isEmpty()) {
-            Vertex vertexClosestToV0 = vertexPQ.poll();
-            visited[vertexClosestToV0.index] = true; // THIS LINE IS WRONG AND SHOULD BE DELETED. A mistake I made.
-            for(int i = 0; i<this.edges.get(vertexClosestToV0.index).size(); i++) {
-                // relax vertices that are connected to the vertexClosestToV0
-                Vertex vertexToRelax = this.edges.get(vertexClosestToV0.index).get(i);
-                if(!visited[vertexToRelax.index]) {
-                    if(dist[vertexClosestToV0.index] + vertexToRelax.weight < dist[vertexToRelax.index]) {
-                        dist[vertexToRelax.index] = dist[vertexClosestToV0.index] + vertexToRelax.weight;
-                        prev[vertexToRelax.index] = vertexClosestToV0.index;
-                    }
-                    addedToPQ[vertexToRelax.index] = true; // THIS IS RIGHT, a better idea to record all the vertices
-                    // that are adjacent to the nodes we already visited, these vertices are the next to take into consideration to relax.
-                    vertexPQ.add(new Vertex(vertexToRelax.index, dist[vertexToRelax.index]));
-                }
-            }
-        }
-
-        ##
-        #  The version 1 code has a typical waste of resources as it traverses all the vertices including those who are not adjacent
-        #  to the vertices we already visited, hence visiting these vertices would simply do nothing but waste time let alone relaxing.
-        #  version 2 fixes as it focus on maintaining a priority queue which consists of vertices that are to be relaxed.
-        ##
-
-        */
-
-        int u;
-        PriorityQueue<Vertex> verticesAdjacentPQ = new PriorityQueue<>(this.v, new Vertex());
-        verticesAdjacentPQ.add(new Vertex(v0, 0));
-        while (!verticesAdjacentPQ.isEmpty()) {
-            Vertex vertexClosestToV0 = verticesAdjacentPQ.poll();
-            u = vertexClosestToV0.index;
-            List<Vertex> vertexList = this.edges.get(u);
-            for (Vertex vertexToRelax : vertexList) {
-                double w = vertexToRelax.weight;
-                int i = vertexToRelax.index;
-                if (!addedToPQ[i] && w < Double.MAX_VALUE) {
-                    if (w + dist[u] < dist[i]) {
-                        dist[i] = w + dist[u];
-                        prev[i] = u;
-                    }
-                    addedToPQ[i] = true;
-                    verticesAdjacentPQ.add(new Vertex(i, dist[i]));
-                }
-            }
-
-        }
-
-        if (prev[v1] == 0 || dist[v1] == 0) return null;  // no route exists
-
-        List<Integer> RouteArrayList = new ArrayList<>();
-        RouteArrayList.add(v1);
-        int node = prev[v1];
-        while (node != v0) {
-            RouteArrayList.add(node);
-            node = prev[node];
-        }
-        RouteArrayList.add(v0);
-        Collections.reverse(RouteArrayList);
-        String[] res = new String[RouteArrayList.size()];
-
-        double cost;
-        for (int i = 0; i < RouteArrayList.size() - 1; i++) {
-            cost = getWeight(RouteArrayList.get(i), RouteArrayList.get(i+1));
-            res[i] = "from index " + RouteArrayList.get(i) + " to index " + RouteArrayList.get(i+1) + " with cost of " + cost;
-        }
-        res[RouteArrayList.size() - 1] = "total cost: " + dist[v1];
-        return res;
+    static StopTimesColumns getStopTimesColumns() throws IOException {
+        if (stopTimesColumns == null) stopTimesColumns = StopTimesColumns.load(PATH_STOP_TIMES, PATH_STOP_TIMES_CACHE);
+        return stopTimesColumns;
     }
-}
-
-public class Algorithm2FinalProject {
-    static final String PATH_STOP_TIMES = "src/stop_times.txt";
-    static final String PATH_STOPS = "src/stops.txt";
-    static final String PATH_TRANSFERS = "src/transfers.txt";
 
     static int getLineNumber(File file) {
         if (file.exists()) {
@@ -486,7 +333,6 @@ public class Algorithm2FinalProject {
     }
 
     static String[] getShortestRoute(String start, String end) throws IOException {
-        int largestStopID = 0;
         boolean startFound = false, endFound = false;
         int startID = 0, endID = 0;
 
@@ -494,11 +340,6 @@ public class Algorithm2FinalProject {
             BufferedReader bufferedReader = new BufferedReader(new FileReader(PATH_STOPS));
             String stopsInfoLine = bufferedReader.readLine();
             while (stopsInfoLine != null) {
-                try {
-                    largestStopID = Math.max(Integer.parseInt(stopsInfoLine.split(",")[0]), largestStopID);
-                } catch (NumberFormatException ignored) {
-                }
-
                 String stopName = stopsInfoLine.split(",")[2];
                 if (start.equalsIgnoreCase(stopName)) {
                     startFound = true;
@@ -525,17 +366,59 @@ public class Algorithm2FinalProject {
             e.printStackTrace();
         }
 
+        DGraph graph = getNetworkGraph();
+        return PARALLEL_SSSP ? graph.DeltaStepping(startID, endID) : graph.Dijkstra(startID, endID);
+    }
+
+    // built once and kept between queries, so the parallel engine's edge arrays are only copied once as well.
+    // Vertices cover every stop id in the feed; coordinate routes start and end at stops, so they never change it.
+    static DGraph getNetworkGraph() throws IOException {
+        if (networkGraph == null) networkGraph = buildGraph(largestStopIDInFeed() + 1);
+        return networkGraph;
+    }
+
+    // the largest stop id in stops.txt, stop_times.txt or transfers.txt
+    static int largestStopIDInFeed() throws IOException {
+        int[] largest = {0};
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(PATH_STOPS))) {
+            String stopsInfoLine = bufferedReader.readLine();
+            while (stopsInfoLine != null) {
+                try {
+                    largest[0] = Math.max(Integer.parseInt(stopsInfoLine.split(",")[0].trim()), largest[0]);
+                } catch (NumberFormatException ignored) {
+                }
+                stopsInfoLine = bufferedReader.readLine();
+            }
+        }
+        if (OFF_HEAP_STOP_TIMES) {
+            StopTimesColumns columns = getStopTimesColumns();
+            for (int row = 0; row < columns.rows(); row++) largest[0] = Math.max(columns.get(StopTimesColumns.STOP, row), largest[0]);
+        } else {
+            try (BufferedReader bufferedReader = new BufferedReader(new FileReader(PATH_STOP_TIMES))) {
+                bufferedReader.readLine();
+                String currentLine = bufferedReader.readLine();
+                while (currentLine != null) {
+                    largest[0] = Math.max(Integer.parseInt(currentLine.split(",")[3].trim()), largest[0]);
+                    currentLine = bufferedReader.readLine();
+                }
+            }
+        }
+        readTransfers((start, end, weight) -> largest[0] = Math.max(Math.max(start, end), largest[0]));
+        return largest[0];
+    }
+
+    // stop ids 0..vertices-1 with an edge per consecutive pair of stops on a trip and one per transfer
+    static DGraph buildGraph(int vertices) throws IOException {
+        if (OFF_HEAP_STOP_TIMES) return buildGraph(vertices, getStopTimesColumns());
+
         File fileStopTimes = new File(PATH_STOP_TIMES);
         File fileTransfers = new File(PATH_TRANSFERS);
 
-        DGraph graph = new DGraph(largestStopID + 1, getLineNumber(fileStopTimes) + getLineNumber(fileTransfers));
+        DGraph graph = new DGraph(vertices, getLineNumber(fileStopTimes) + getLineNumber(fileTransfers));
 
         BufferedReader stopTimesReader = new BufferedReader(new FileReader(PATH_STOP_TIMES));
-        BufferedReader stopTransfersReader = new BufferedReader(new FileReader(PATH_TRANSFERS));
-
         String stopTimesLastLine = stopTimesReader.readLine();
         String stopTimesCurrentLine = stopTimesReader.readLine();
-        String transfersCurrentLine = stopTransfersReader.readLine();
 
         String[] stopsLastLines;
         String[] stopsCurrentLines;
@@ -549,19 +432,78 @@ public class Algorithm2FinalProject {
             stopTimesCurrentLine = stopTimesReader.readLine();
         }
 
+        readTransfers(graph::addEdge);
+        return graph;
+    }
+
+    // the same graph with its adjacency in direct buffers, so only the per stop offsets live on the heap
+    static DGraph buildGraph(int vertices, StopTimesColumns columns) throws IOException {
+        int[] offset = new int[vertices + 1];
+        DGraph.EdgeConsumer count = (start, end, weight) -> offset[start + 1]++;
+        readTripEdges(columns, count);
+        readTransfers(count);
+        for (int u = 0; u < vertices; u++) offset[u + 1] += offset[u];
+
+        IntBuffer targets = ByteBuffer.allocateDirect(offset[vertices] * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        DoubleBuffer weights = ByteBuffer.allocateDirect(offset[vertices] * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        int[] next = Arrays.copyOf(offset, vertices);
+        DGraph.EdgeConsumer fill = (start, end, weight) -> {
+            targets.put(next[start], end);
+            weights.put(next[start]++, weight);
+        };
+        readTripEdges(columns, fill);
+        readTransfers(fill);
+        return new DGraph(vertices, offset, targets, weights);
+    }
+
+    static void readTripEdges(StopTimesColumns columns, DGraph.EdgeConsumer consumer) {
+        for (int row = 1; row < columns.rows(); row++) {
+            if (columns.get(StopTimesColumns.TRIP, row - 1) == columns.get(StopTimesColumns.TRIP, row)) {
+                consumer.accept(columns.get(StopTimesColumns.STOP, row - 1), columns.get(StopTimesColumns.STOP, row), 1);
+            }
+        }
+    }
+
+    static void readTransfers(DGraph.EdgeConsumer consumer) throws IOException {
+        BufferedReader stopTransfersReader = new BufferedReader(new FileReader(PATH_TRANSFERS));
+        String transfersCurrentLine = stopTransfersReader.readLine();
+
         String[] transfersCurrentLines;
         while (transfersCurrentLine != null) {
             transfersCurrentLines = transfersCurrentLine.split(",");
             if (transfersCurrentLines[2].equalsIgnoreCase("0")) {
-                graph.addEdge(Integer.parseInt(transfersCurrentLines[0]), Integer.parseInt(transfersCurrentLines[1]), 2);
+                consumer.accept(Integer.parseInt(transfersCurrentLines[0]), Integer.parseInt(transfersCurrentLines[1]), 2);
             } else if (transfersCurrentLines[2].equalsIgnoreCase("2")) {
-                graph.addEdge(Integer.parseInt(transfersCurrentLines[0]), Integer.parseInt(transfersCurrentLines[1]), Double.parseDouble(transfersCurrentLines[3]) / 100);
+                consumer.accept(Integer.parseInt(transfersCurrentLines[0]), Integer.parseInt(transfersCurrentLines[1]), Double.parseDouble(transfersCurrentLines[3]) / 100);
             }
             transfersCurrentLine = stopTransfersReader.readLine();
         }
+        stopTransfersReader.close();
+    }
+
+    // walks from the start coordinates to nearby stops, rides the network, then walks from a stop near the end.
+    // The search starts from every stop near the start at its walking cost, and the cheapest stop near the end
+    // including the walk from it wins, so the shared graph is never edited and its parallel engine is kept.
+    static String[] getShortestRoute(double startLat, double startLon, double endLat, double endLon) throws IOException {
+        StopsGrid stopsGrid = getStopsGrid();
+        DGraph graph = getNetworkGraph();
+        int[] startStops = stopsGrid.walkableStops(startLat, startLon, MAX_WALK_METRES, NEARBY_STOPS);
+        int[] endStops = stopsGrid.walkableStops(endLat, endLon, MAX_WALK_METRES, NEARBY_STOPS);
+        double[] walkToStart = new double[startStops.length], walkFromEnd = new double[endStops.length];
+        for (int k = 0; k < startStops.length; k++) walkToStart[k] = walkingCost(stopsGrid.metresTo(startLat, startLon, startStops[k]));
+        for (int k = 0; k < endStops.length; k++) walkFromEnd[k] = walkingCost(stopsGrid.metresTo(endLat, endLon, endStops[k]));
+
+        String[] res = PARALLEL_SSSP ? graph.DeltaStepping(startStops, walkToStart, endStops, walkFromEnd)
+                : graph.Dijkstra(startStops, walkToStart, endStops, walkFromEnd);
+        if (res == null) return null;
+        res[0] = "walk " + res[0];
+        res[res.length - 2] = res[res.length - 2].replace(" to end ", " walk to end ");
+        return res;
+    }
 
-        return graph.Dijkstra(startID, endID);
-
+    // same scale as the transfer edges, which cost min_transfer_time / 100
+    static double walkingCost(double metres) {
+        return metres / WALKING_METRES_PER_SECOND / 100;
     }
 
     public static Boolean isValidTime(String time) {
@@ -584,6 +526,26 @@ public class Algorithm2FinalProject {
         }
     }
 
+    // seconds after midnight for HH:MM:SS, hours past 23 allowed for trips running after midnight up to
+    // MAX_SERVICE_HOURS; -1 if malformed or later than that
+    static int timeToSeconds(String time) {
+        try {
+            String[] HHMMSS = time.split(":");
+            if (HHMMSS.length != 3) return -1;
+            int hours = Integer.parseInt(HHMMSS[0].trim());
+            int minutes = Integer.parseInt(HHMMSS[1].trim());
+            int seconds = Integer.parseInt(HHMMSS[2].trim());
+            if (hours < 0 || hours > MAX_SERVICE_HOURS || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) return -1;
+            return hours * 3600 + minutes * 60 + seconds;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String secondsToTime(int seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
     public static Boolean areTimesEqual(String time1, String time2) {
         try {
             String[] HHMMSS1 = time1.split(":");
@@ -598,38 +560,11 @@ public class Algorithm2FinalProject {
         }
     }
 
+    // trip ids and stop lists of the trips arriving somewhere at the input time, null if there are none
     public static HashMap<String, List<Integer>> searchForTripsByArrivalTime(String input) {
-        Trip trip = new Trip();
-        List<String> keysToLookUp = new ArrayList<>();
         HashMap<String, List<Integer>> result = new HashMap<>();
-
         try {
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(PATH_STOP_TIMES));
-            bufferedReader.readLine();
-            String currentLine = bufferedReader.readLine();
-            String tripID = currentLine.split(",")[0].trim();
-            String arrivalTime = currentLine.split(",")[1].trim();
-            int stopIndex = Integer.parseInt(currentLine.split(",")[4].trim()) - 1;
-            int stopID = Integer.parseInt(currentLine.split(",")[3].trim());
-            if (isValidTime(arrivalTime)) {
-                trip.addStopToTrip(tripID, stopIndex, stopID);
-                if (areTimesEqual(arrivalTime, input)) keysToLookUp.add(tripID);
-            }
-            while (true) {
-                try {
-                    currentLine = bufferedReader.readLine();
-                    tripID =  currentLine.split(",")[0].trim();
-                    arrivalTime = currentLine.split(",")[1].trim();
-                    stopIndex = Integer.parseInt(currentLine.split(",")[4].trim()) - 1;
-                    stopID = Integer.parseInt(currentLine.split(",")[3].trim());
-                    if (isValidTime(arrivalTime)) {
-                        trip.addStopToTrip(tripID, stopIndex, stopID);
-                        if (areTimesEqual(arrivalTime, input)) keysToLookUp.add(tripID);
-                    }
-                } catch (NullPointerException e) {break;}
-            }
-            if (keysToLookUp.size() == 0) return null;
-            for (String key : keysToLookUp) result.put(key, trip.getMap().get(key));
+            if (!searchForTripsByArrivalTime(input, result::put)) return null;
             return result;
         } catch (FileNotFoundException e) {
             System.out.println("File not found exception");
@@ -639,6 +574,94 @@ public class Algorithm2FinalProject {
         }
         return null;
     }
+
+    /**
+     * Finds the trips arriving somewhere at the input time first, then builds the stop list of only those trips,
+     * handing each to {@code consumer} as soon as its last row has been read.
+     * @return whether any trip matched
+     */
+    static boolean searchForTripsByArrivalTime(String input, BiConsumer<String, List<Integer>> consumer) throws IOException {
+        if (OFF_HEAP_STOP_TIMES) return searchForTripsByArrivalTime(getStopTimesColumns(), input, consumer);
+        return searchForTripsByArrivalTime(PATH_STOP_TIMES, input, consumer);
+    }
+
+    static boolean searchForTripsByArrivalTime(String path, String input, BiConsumer<String, List<Integer>> consumer) throws IOException {
+        int target = timeToSeconds(input);
+        if (target < 0 || target >= 24 * 3600) return false;
+
+        // first pass: the matching trips and the last row each of them appears on, slicing out only trip_id and arrival_time
+        Map<String, Integer> lastRowOfTrip = new HashMap<>();
+        int lastRow = -1;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
+            bufferedReader.readLine();
+            String currentLine = bufferedReader.readLine();
+            for (int row = 0; currentLine != null; row++) {
+                int tripEnd = currentLine.indexOf(','), arrivalEnd = currentLine.indexOf(',', tripEnd + 1);
+                String tripID = currentLine.substring(0, tripEnd).trim();
+                if (lastRowOfTrip.containsKey(tripID)
+                        || timeToSeconds(currentLine.substring(tripEnd + 1, arrivalEnd < 0 ? currentLine.length() : arrivalEnd)) == target) {
+                    lastRowOfTrip.put(tripID, row);
+                    lastRow = row;
+                }
+                currentLine = bufferedReader.readLine();
+            }
+        }
+        if (lastRowOfTrip.size() == 0) return false;
+
+        // second pass: only rows of matching trips are parsed, and reading stops after the last of them
+        Map<String, List<Integer>> assembling = new HashMap<>();
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
+            bufferedReader.readLine();
+            String currentLine = bufferedReader.readLine();
+            for (int row = 0; row <= lastRow; row++) {
+                String tripID = currentLine.substring(0, currentLine.indexOf(',')).trim();
+                Integer tripLastRow = lastRowOfTrip.get(tripID);
+                if (tripLastRow != null) {
+                    String[] fields = currentLine.split(",");
+                    if (isValidTime(fields[1].trim())) {
+                        int stopIndex = Integer.parseInt(fields[4].trim()) - 1;
+                        int stopID = Integer.parseInt(fields[3].trim());
+                        assembling.computeIfAbsent(tripID, key -> new ArrayList<>(10)).add(stopIndex, stopID);
+                    }
+                    if (row == tripLastRow) consumer.accept(tripID, assembling.remove(tripID));
+                }
+                currentLine = bufferedReader.readLine();
+            }
+        }
+        return true;
+    }
+
+    // the same two passes over the off-heap columns, so trips whose rows are spread over the feed are still whole
+    static boolean searchForTripsByArrivalTime(StopTimesColumns columns, String input, BiConsumer<String, List<Integer>> consumer) {
+        int target = timeToSeconds(input);
+        if (target < 0 || target >= 24 * 3600) return false;
+
+        Map<Integer, Integer> lastRowOfTrip = new HashMap<>();
+        int lastRow = -1;
+        for (int row = 0; row < columns.rows(); row++) {
+            int trip = columns.get(StopTimesColumns.TRIP, row);
+            if (lastRowOfTrip.containsKey(trip) || columns.get(StopTimesColumns.ARRIVAL, row) == target) {
+                lastRowOfTrip.put(trip, row);
+                lastRow = row;
+            }
+        }
+        if (lastRowOfTrip.size() == 0) return false;
+
+        Map<Integer, List<Integer>> assembling = new HashMap<>();
+        for (int row = 0; row <= lastRow; row++) {
+            int trip = columns.get(StopTimesColumns.TRIP, row);
+            Integer tripLastRow = lastRowOfTrip.get(trip);
+            if (tripLastRow == null) continue;
+            int arrival = columns.get(StopTimesColumns.ARRIVAL, row);
+            if (arrival >= 0 && arrival < 24 * 3600) {
+                assembling.computeIfAbsent(trip, key -> new ArrayList<>(10))
+                        .add(columns.get(StopTimesColumns.SEQUENCE, row) - 1, columns.get(StopTimesColumns.STOP, row));
+            }
+            if (row == tripLastRow) consumer.accept(columns.tripID(trip), assembling.remove(trip));
+        }
+        return true;
+    }
+
     public static boolean mode1(Scanner scanner) {
 
         String start, end, scan;
@@ -679,6 +702,89 @@ public class Algorithm2FinalProject {
         return false;
     }
 
+    public static boolean mode4(Scanner scanner) {
+        double[] start, end;
+        String scan;
+        scanner.nextLine();
+        while (true) {
+            try {
+                System.out.print("Enter start coordinates as lat,lon: ");
+                scan = scanner.nextLine();
+                if (scan.equalsIgnoreCase("exit")) return true;
+                start = parseCoordinates(scan);
+                System.out.print("Enter end coordinates as lat,lon: ");
+                scan = scanner.nextLine();
+                if (scan.equalsIgnoreCase("exit")) return true;
+                end = parseCoordinates(scan);
+                break;
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+                System.out.println("Please try again");
+            }
+        }
+
+        try {
+            String[] result = getShortestRoute(start[0], start[1], end[0], end[1]);
+            if (result == null) System.out.println("No path route exists between these coordinates");
+            else for (String line : result) System.out.println(line);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    static double[] parseCoordinates(String input) throws Exception {
+        String[] latLon = input.split(",");
+        if (latLon.length != 2) throw new Exception("Invalid coordinates " + input);
+        double lat = Double.parseDouble(latLon[0].trim()), lon = Double.parseDouble(latLon[1].trim());
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) throw new Exception("Coordinates out of range " + input);
+        return new double[]{lat, lon};
+    }
+
+    public static boolean mode5(Scanner scanner) {
+        String input;
+        int stopID;
+
+        while (true) {
+            System.out.print("Enter the bus stop ID: ");
+            input = scanner.next();
+            if (input.equalsIgnoreCase("exit")) return true;
+            try {
+                stopID = Integer.parseInt(input);
+                break;
+            } catch (NumberFormatException e) {
+                System.out.println("Please input a valid stop ID");
+            }
+        }
+
+        while (true) {
+            System.out.print("Enter the time in the format of HH:MM:SS : ");
+            input = scanner.next();
+            if (input.equalsIgnoreCase("exit")) return true;
+            int after = timeToSeconds(input);
+            if (after < 0) {
+                System.out.println("Please input a valid time");
+                continue;
+            }
+            try {
+                DepartureBoard board = getDepartureBoard();
+                int[] departures = board.next(stopID, after, NEXT_DEPARTURES);
+                if (departures.length == 0) System.out.println("No departures found from this stop after the input time");
+                for (int at = 0; at < departures.length; at += DepartureBoard.RESULT_STRIDE) {
+                    int departure = departures[at + DepartureBoard.DEPARTURE];
+                    System.out.println("Departure: " + secondsToTime(departure % (24 * 3600))
+                            + (departure >= 24 * 3600 ? " (next day)" : "")
+                            + " Trip ID: " + board.tripID(departures[at + DepartureBoard.TRIP])
+                            + " Stop sequence: " + departures[at + DepartureBoard.SEQUENCE]
+                            + (departures[at + DepartureBoard.SERVICE_DAY] < 0 ? " (previous day's service)" : ""));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+    }
+
     public static boolean mode2(Scanner scanner) {
         String input;
         scanner.nextLine();
@@ -709,16 +815,12 @@ public class Algorithm2FinalProject {
                 return true;
             } else
                 if (isValidTime(input)) {
-                    HashMap<String, List<Integer>> result = searchForTripsByArrivalTime(input);
-                    if (result == null) {
-                        System.out.println("No trips found with the input arrival time");
-                    } else {
-                        Set set = result.keySet();
-                        Object[] array = set.toArray();
-                        Arrays.sort(array);
-                        for (Object key: array) {
-                            System.out.println("Trip ID: " + key + " Route: " + result.get(key));
-                        }
+                    try {
+                        boolean found = searchForTripsByArrivalTime(input, (tripID, route) ->
+                                System.out.println("Trip ID: " + tripID + " Route: " + route));
+                        if (!found) System.out.println("No trips found with the input arrival time");
+                    } catch (Exception e) {
+                        e.printStackTrace();
                     }
                     break;
                 }
@@ -737,12 +839,14 @@ public class Algorithm2FinalProject {
         System.out.println("- 1. Finding shortest paths between 2 bus stops");
         System.out.println("- 2. Fuzzy or accurate Search for a bus stop");
         System.out.println("- 3. Searching for trips given an arrival time");
+        System.out.println("- 4. Finding shortest paths between 2 coordinates");
+        System.out.println("- 5. Next departures from a bus stop");
 
         Scanner scan = new Scanner(System.in);
         boolean exit = false;
 
         while (true) {
-            System.out.print("Type 1, 2, 3 or exit: ");
+            System.out.print("Type 1, 2, 3, 4, 5 or exit: ");
             String inputString = scan.next();
             try {
                 int mode = Integer.parseInt(inputString);
@@ -750,6 +854,8 @@ public class Algorithm2FinalProject {
                     case 1: exit = mode1(scan); break;
                     case 2: exit = mode2(scan); break;
                     case 3: exit = mode3(scan); break;
+                    case 4: exit = mode4(scan); break;
+                    case 5: exit = mode5(scan); break;
                     default: System.out.println("Current mode " + mode + " is not supported yet"); break;
                 }
                 if (exit) break;
@@ -757,7 +863,7 @@ public class Algorithm2FinalProject {
                 if (inputString.equalsIgnoreCase("exit")) {
                     break;
                 } else {
-                    System.out.println("Input must be a digit of 1, 2, 3 or exit");
+                    System.out.println("Input must be a digit of 1, 2, 3, 4, 5 or exit");
                 }
             }
         }
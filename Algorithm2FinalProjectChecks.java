@@ -0,0 +1,308 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+// checks that need no feed on disk, run with: javac *.java && java Algorithm2FinalProjectChecks
+public class Algorithm2FinalProjectChecks {
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    // Dijkstra and delta-stepping must agree on dist and prev, whatever the pool size
+    static void checkShortestPathEngines() {
+        DGraph small = new DGraph(3, 3);
+        small.addEdge(0, 1, 10);
+        small.addEdge(0, 2, 1);
+        small.addEdge(2, 1, 1);
+        check(Arrays.equals(small.Dijkstra(0, 1), small.DeltaStepping(0, 1)), "engines disagree on the 3 vertex graph");
+        check(small.Dijkstra(0, 1)[2].equals("total cost: 2.0"), "Dijkstra missed the cheaper path 0 -> 2 -> 1");
+
+        Random random = new Random(20327669);
+        ForkJoinPool[] pools = {new ForkJoinPool(1), new ForkJoinPool(4), new ForkJoinPool(16)};
+        for (int t = 0; t < 200; t++) {
+            int v = 2 + random.nextInt(t < 150 ? 60 : 3000);
+            DGraph graph = new DGraph(v, 0);
+            for (int e = random.nextInt(4 * v); e > 0; e--) {
+                int w = random.nextInt(12);
+                // trip hops, transfers, zero cost transfers and min_transfer_time / 100 like the feed
+                graph.addEdge(random.nextInt(v), random.nextInt(v), w == 0 ? 0 : w < 6 ? 1 : w < 9 ? 2 : random.nextInt(600) / 100.0);
+            }
+            int source = random.nextInt(v);
+            double[] dist = graph.dijkstraDistances(source);
+            int[] prev = graph.shortestPathTree(source, dist);
+            for (ForkJoinPool pool : pools) {
+                ParallelSSSP sssp = new ParallelSSSP(graph, ParallelSSSP.defaultDelta(graph), pool);
+                sssp.run(source);
+                check(Arrays.equals(dist, sssp.dist()), "dist differs on graph " + t);
+                check(Arrays.equals(prev, sssp.prev()), "prev differs on graph " + t);
+            }
+            for (int i = 0; i < v; i++) {
+                if (dist[i] == Double.MAX_VALUE) check(prev[i] == -1, "unreachable vertex with a prev on graph " + t);
+                else if (i != source) check(isTight(graph, dist, prev[i], i), "prev is not a shortest path edge on graph " + t);
+            }
+            int target = random.nextInt(v);
+            check(Arrays.equals(graph.Dijkstra(source, target), graph.DeltaStepping(source, target)), "routes differ on graph " + t);
+            checkSeededSearch(graph, random, pools, t);
+        }
+        for (ForkJoinPool pool : pools) pool.shutdown();
+    }
+
+    // a search seeded from several sources at their initial costs, as coordinate routing does it, against the
+    // same graph with a start vertex joined to the sources and an end vertex the targets are joined to
+    static void checkSeededSearch(DGraph graph, Random random, ForkJoinPool[] pools, int t) {
+        int v = graph.v;
+        int[] sources = new int[1 + random.nextInt(4)], targets = new int[1 + random.nextInt(4)];
+        double[] initial = new double[sources.length], remaining = new double[targets.length];
+        for (int k = 0; k < sources.length; k++) {
+            sources[k] = random.nextInt(v);
+            initial[k] = random.nextInt(8) / 4.0;
+        }
+        for (int k = 0; k < targets.length; k++) {
+            targets[k] = random.nextInt(v);
+            remaining[k] = random.nextInt(8) / 4.0;
+        }
+
+        double[] dist = graph.dijkstraDistances(sources, initial);
+        int[] prev = graph.shortestPathTree(sources, initial, dist);
+        for (ForkJoinPool pool : pools) {
+            ParallelSSSP sssp = new ParallelSSSP(graph, ParallelSSSP.defaultDelta(graph), pool);
+            sssp.run(sources, initial);
+            check(Arrays.equals(dist, sssp.dist()), "seeded dist differs on graph " + t);
+            check(Arrays.equals(prev, sssp.prev()), "seeded prev differs on graph " + t);
+        }
+        String[] route = graph.Dijkstra(sources, initial, targets, remaining);
+        check(Arrays.equals(route, graph.DeltaStepping(sources, initial, targets, remaining)), "seeded routes differ on graph " + t);
+
+        DGraph joined = new DGraph(v + 2, 0);
+        for (int u = 0; u < v; u++) for (int k = 0; k < graph.degree(u); k++) joined.addEdge(u, graph.target(u, k), graph.weight(u, k));
+        for (int k = 0; k < sources.length; k++) joined.addEdge(v, sources[k], initial[k]);
+        for (int k = 0; k < targets.length; k++) joined.addEdge(targets[k], v + 1, remaining[k]);
+        double expected = joined.dijkstraDistances(v)[v + 1];
+        if (expected == Double.MAX_VALUE) check(route == null, "a seeded route where there is none on graph " + t);
+        else check(route != null && route[route.length - 1].equals("total cost: " + expected), "seeded route cost differs on graph " + t);
+    }
+
+    static boolean isTight(DGraph graph, double[] dist, int u, int i) {
+        for (int k = 0; k < graph.degree(u); k++) if (graph.target(u, k) == i && dist[u] + graph.weight(u, k) == dist[i]) return true;
+        return false;
+    }
+
+    // nearest and withinRadius against a scan of every stop, on clustered, spread out, single and coincident stops,
+    // with queries inside and outside the area the stops cover
+    static void checkStopsGrid() {
+        Random random = new Random(20327669);
+        for (int t = 0; t < 300; t++) {
+            int n = t < 10 ? 1 + t % 3 : 1 + random.nextInt(t < 150 ? 40 : 2000);
+            double spread = t % 4 == 0 ? 0.001 : 0.2;
+            int[] ids = new int[n];
+            double[] lat = new double[n], lon = new double[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = 3 * i + random.nextInt(3);
+                boolean coincident = i > 0 && random.nextInt(10) == 0;
+                lat[i] = coincident ? lat[i - 1] : 49.2 + spread * (t % 3 == 0 ? random.nextGaussian() / 8 : random.nextDouble());
+                lon[i] = coincident ? lon[i - 1] : -123.1 + spread * (t % 3 == 0 ? random.nextGaussian() / 8 : random.nextDouble());
+            }
+            StopsGrid grid = new StopsGrid(ids, lat, lon);
+            for (int q = 0; q < 20; q++) {
+                double qLat = 49.2 - spread + 3 * spread * random.nextDouble(), qLon = -123.1 - spread + 3 * spread * random.nextDouble();
+                double[] all = new double[n];
+                for (int i = 0; i < n; i++) all[i] = grid.metresTo(qLat, qLon, ids[i]);
+                double[] sorted = all.clone();
+                Arrays.sort(sorted);
+
+                int k = 1 + random.nextInt(12);
+                int[] nearest = grid.nearest(qLat, qLon, k);
+                check(nearest.length == Math.min(k, n), "nearest returns min(k, n) stops on grid " + t);
+                check(Arrays.stream(nearest).distinct().count() == nearest.length, "nearest repeats a stop on grid " + t);
+                for (int i = 0; i < nearest.length; i++) {
+                    check(grid.metresTo(qLat, qLon, nearest[i]) == sorted[i], "nearest misses a closer stop on grid " + t);
+                }
+
+                double radius = sorted[random.nextInt(n)] + random.nextInt(3) - 1;
+                int[] within = grid.withinRadius(qLat, qLon, radius);
+                int expected = 0;
+                for (double d : all) if (d <= radius) expected++;
+                check(within.length == expected, "withinRadius count on grid " + t);
+                for (int i = 0; i < within.length; i++) {
+                    check(grid.metresTo(qLat, qLon, within[i]) == sorted[i], "withinRadius order on grid " + t);
+                }
+            }
+        }
+    }
+
+    static void checkServiceTimes() {
+        check(Algorithm2FinalProject.timeToSeconds("24:30:00") == 88200, "times after midnight are accepted");
+        check(Algorithm2FinalProject.timeToSeconds("72:00:00") == 72 * 3600, "the last accepted hour");
+        check(Algorithm2FinalProject.timeToSeconds("73:00:00") == -1, "hours past MAX_SERVICE_HOURS are rejected");
+        check(Algorithm2FinalProject.timeToSeconds("600000:00:00") == -1, "hours that would overflow are rejected");
+        check(Algorithm2FinalProject.timeToSeconds("12:60:00") == -1, "minutes past 59 are rejected");
+
+        DepartureBoard board = new DepartureBoard(new String[]{"1", "2"}, new int[]{5, 5}, new int[]{1, 1}, new int[]{3000, 90000}, 2);
+        check(board.next(5, Integer.MAX_VALUE, 10).length == 0, "no departure after the largest time");
+        check(board.window(5, Integer.MAX_VALUE - 1, Integer.MAX_VALUE).length == 0, "empty window at the largest time");
+        check(board.window(5, 0, Integer.MAX_VALUE).length > 0, "a window up to the largest time");
+        check(board.window(5, 5000, 100).length == 0, "a window that ends before it starts is empty");
+        check(board.window(5, 90000, 3000).length == 0, "a window that ends before it starts is empty on the previous day too");
+        check(board.next(5, 0, -1).length == 0 && board.next(5, 0, 0).length == 0, "no departures for a negative or zero count");
+        check(board.next(5, 0, 1).length == DepartureBoard.RESULT_STRIDE, "one departure for a count of one");
+    }
+
+    // 00:50, 13:53 and 25:00 from one stop: yesterday's 25:00 run departs at 01:00 today, before 13:53
+    static void checkDepartureServiceDays() {
+        DepartureBoard board = new DepartureBoard(new String[]{"2", "3", "1"}, new int[]{5, 5, 5}, new int[]{1, 4, 7},
+                new int[]{3000, 49980, 90000}, 3);
+        int[] next = board.next(5, 1800, 10);
+        // trips are numbered in the order they first appear: "2" is 0, "3" is 1, "1" is 2
+        int[] expected = {
+                3000, 0, 1, 0,
+                3600, 2, 7, -1,
+                49980, 1, 4, 0,
+                90000, 2, 7, 0};
+        check(Arrays.equals(next, expected), "next departures " + Arrays.toString(next));
+        check(board.tripID(next[DepartureBoard.TRIP]).equals("2") && board.tripID(next[DepartureBoard.RESULT_STRIDE + DepartureBoard.TRIP]).equals("1"),
+                "trip numbers give back the trip ids");
+        for (int at = DepartureBoard.RESULT_STRIDE; at < next.length; at += DepartureBoard.RESULT_STRIDE)
+            check(next[at - DepartureBoard.RESULT_STRIDE] <= next[at], "next departures are in time order");
+        check(Arrays.equals(board.window(5, 0, 4000), Arrays.copyOf(expected, 8)), "window before 01:06:40");
+    }
+
+    // putTrip and removeTrip find a trip's stops through the trip -> stops index, then through their own changes
+    static void checkDepartureBoardUpdates() {
+        DepartureBoard board = new DepartureBoard(new String[]{"1", "1", "2"}, new int[]{5, 6, 6}, new int[]{1, 2, 1},
+                new int[]{100, 200, 150}, 3);
+        board.putTrip("1", new int[]{7}, new int[]{1}, new int[]{300});
+        check(board.window(5, 0, 1000).length == 0, "putTrip removes the trip from the stops it no longer calls at");
+        check(Arrays.equals(board.window(6, 0, 1000), new int[]{150, 1, 1, 0}), "putTrip keeps other trips");
+        check(Arrays.equals(board.window(7, 0, 1000), new int[]{300, 0, 1, 0}), "putTrip adds the new stops");
+        board.putTrip("4", new int[]{7}, new int[]{2}, new int[]{250});
+        check(Arrays.equals(board.window(7, 0, 1000), new int[]{250, 2, 2, 0, 300, 0, 1, 0}) && board.tripID(2).equals("4"),
+                "putTrip of a new trip");
+        board.removeTrip("1");
+        board.removeTrip("1");
+        board.removeTrip("3");
+        board.removeTrip("4");
+        check(board.window(7, 0, 1000).length == 0, "removeTrip after putTrip");
+        board.removeTrip("2");
+        check(board.window(6, 0, 1000).length == 0, "removeTrip of a trip from the initial feed");
+    }
+
+    // trips 1 and B2 interleave, and trip 03 matches in two runs split by trip 1, so rows of a trip are not contiguous
+    static File interleavedFeed() throws IOException {
+        File stopTimes = File.createTempFile("stop_times", ".txt");
+        stopTimes.deleteOnExit();
+        Files.write(stopTimes.toPath(), Arrays.asList(
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence,stop_headsign,pickup_type,drop_off_type,shape_dist_traveled",
+                "1,12:00:00,12:00:00,5,1,,0,0,",
+                "B2,12:01:00,12:01:00,7,1,,0,0,",
+                "03,12:01:00,12:01:00,4,1,,0,0,",
+                "1,12:05:00,12:05:00,6,2,,0,0,",
+                "B2,12:05:00,12:05:00,8,2,,0,0,",
+                "03,12:05:00,12:05:00,3,2,,0,0,",
+                "1,12:09:00,12:09:00,9,3,,0,0,"));
+        return stopTimes;
+    }
+
+    static void checkArrivalSearchOnInterleavedFeed() throws IOException {
+        File stopTimes = interleavedFeed();
+        Map<String, List<Integer>> text = new TreeMap<>();
+        Map<String, List<Integer>> columns = new TreeMap<>();
+        check(Algorithm2FinalProject.searchForTripsByArrivalTime(stopTimes.getPath(), "12:05:00", (trip, stops) -> check(text.put(trip, stops) == null, "trip " + trip + " emitted twice")),
+                "text search finds 12:05:00");
+        check(Algorithm2FinalProject.searchForTripsByArrivalTime(StopTimesColumns.load(stopTimes.getPath(), null), "12:05:00", (trip, stops) -> check(columns.put(trip, stops) == null, "trip " + trip + " emitted twice")),
+                "off-heap search finds 12:05:00");
+        check(text.toString().equals("{03=[4, 3], 1=[5, 6, 9], B2=[7, 8]}"), "text search " + text);
+        check(text.equals(columns), "off-heap search " + columns + " differs from text search " + text);
+        check(!Algorithm2FinalProject.searchForTripsByArrivalTime(StopTimesColumns.load(stopTimes.getPath(), null), "12:02:00", (trip, stops) -> { }),
+                "no trip arrives at 12:02:00");
+    }
+
+    // trip ids that are not plain numbers come out of the off-heap columns exactly as the text path reads them
+    static void checkDepartureBoardTripIDs() throws IOException {
+        File stopTimes = interleavedFeed();
+        DepartureBoard text = DepartureBoard.load(stopTimes.getPath());
+        DepartureBoard columns = DepartureBoard.from(StopTimesColumns.load(stopTimes.getPath(), null));
+        for (int stopID = 0; stopID <= 10; stopID++) {
+            check(describe(text, text.next(stopID, 0, 10)).equals(describe(columns, columns.next(stopID, 0, 10))),
+                    "boards differ at stop " + stopID);
+        }
+        check(describe(text, text.next(4, 0, 10)).equals("[43260 03 1]"), "stop 4 " + describe(text, text.next(4, 0, 10)));
+    }
+
+    static String describe(DepartureBoard board, int[] departures) {
+        List<String> res = new ArrayList<>();
+        for (int at = 0; at < departures.length; at += DepartureBoard.RESULT_STRIDE) {
+            res.add(departures[at + DepartureBoard.DEPARTURE] + " " + board.tripID(departures[at + DepartureBoard.TRIP])
+                    + " " + departures[at + DepartureBoard.SEQUENCE]);
+        }
+        return res.toString();
+    }
+
+    // a cache is reused while it matches its source, and rebuilt when the source changes or the cache is damaged;
+    // the cache's mtime is set to a stamp after each load, so a rebuilt cache is one whose mtime is no longer the stamp
+    static void checkStopTimesCache() throws IOException {
+        FileTime stamp = FileTime.fromMillis(1000000000000L);
+        Path directory = Files.createTempDirectory("stop_times_cache");
+        File stopTimes = interleavedFeed();
+        Path cache = directory.resolve("stop_times.cache");
+        directory.toFile().deleteOnExit();
+        cache.toFile().deleteOnExit();
+
+        check(StopTimesColumns.load(stopTimes.getPath(), cache.toString()).rows() == 7, "a new cache holds every row");
+        Files.setLastModifiedTime(cache, stamp);
+        StopTimesColumns reused = StopTimesColumns.load(stopTimes.getPath(), cache.toString());
+        check(Files.getLastModifiedTime(cache).equals(stamp), "a cache built from the same source is reused");
+        check(reused.rows() == 7 && reused.tripID(reused.get(StopTimesColumns.TRIP, 2)).equals("03"), "a reused cache keeps the trip ids");
+
+        Files.write(stopTimes.toPath(), Collections.singletonList("B2,12:09:00,12:09:00,9,3,,0,0,"), StandardOpenOption.APPEND);
+        check(StopTimesColumns.load(stopTimes.getPath(), cache.toString()).rows() == 8, "an edited source is read again");
+        check(!Files.getLastModifiedTime(cache).equals(stamp), "an edited source rebuilds the cache");
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+        Files.setLastModifiedTime(cache, stamp);
+        check(StopTimesColumns.load(stopTimes.getPath(), cache.toString()).rows() == 8, "a truncated cache is read again");
+        check(!Files.getLastModifiedTime(cache).equals(stamp), "a truncated cache is rebuilt");
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES), 0);
+        }
+        Files.setLastModifiedTime(cache, stamp);
+        check(StopTimesColumns.load(stopTimes.getPath(), cache.toString()).rows() == 8, "a cache with a bad magic is read again");
+        check(!Files.getLastModifiedTime(cache).equals(stamp), "a cache with a bad magic is rebuilt");
+
+        Files.setLastModifiedTime(cache, stamp);
+        boolean failed = false;
+        try {
+            StopTimesColumns.load(directory.resolve("missing.txt").toString(), cache.toString());
+        } catch (IOException e) {
+            failed = true;
+        }
+        check(failed, "a load from a missing source fails");
+        try (Stream<Path> files = Files.list(directory)) {
+            check(files.noneMatch(file -> file.toString().endsWith(".tmp")), "a failed load leaves no .tmp file");
+        }
+        check(Files.getLastModifiedTime(cache).equals(stamp), "a failed load leaves the old cache alone");
+    }
+
+    public static void main(String[] args) throws IOException {
+        checkShortestPathEngines();
+        checkStopsGrid();
+        checkServiceTimes();
+        checkDepartureServiceDays();
+        checkDepartureBoardUpdates();
+        checkArrivalSearchOnInterleavedFeed();
+        checkDepartureBoardTripIDs();
+        checkStopTimesCache();
+        System.out.println("All checks passed");
+    }
+}
@@ -0,0 +1,322 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+class DGraph {
+
+    int v;
+    int e;
+    List<List<Vertex>> edges = new ArrayList<>();
+    // List faster than ArrayList when in declaration?
+
+    // optional adjacency kept outside the heap: edges of u are offset[u] until offset[u + 1] in targets / weights,
+    // and the ones added with addEdge come after them
+    private int[] offset;
+    private IntBuffer targets;
+    private DoubleBuffer weights;
+    private ParallelSSSP parallelSSSP;  // its edge arrays are a copy, so it is rebuilt after any addEdge
+
+    DGraph(int v, int e) {
+        this.v = v;
+        this.e = e;
+
+        for (int i = 0; i < v; i++) {
+            edges.add(new ArrayList<>());
+        }
+    }
+
+    DGraph(int v, int[] offset, IntBuffer targets, DoubleBuffer weights) {
+        this(v, offset[v]);
+        this.offset = offset;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    interface EdgeConsumer {
+        void accept(int start, int end, double weight);
+    }
+
+    static class Vertex implements Comparator<Vertex> {
+        int index;
+        double weight;
+
+        Vertex(int index, double weight) {
+            this.index = index;
+            this.weight = weight;
+        }
+
+        public Vertex() {
+        }
+
+        public int compare(Vertex e1, Vertex e2) {
+            return Double.compare(e1.weight, e2.weight);
+        }
+    }
+
+    void addEdge(int start, int end, double weight) {
+        this.edges.get(start).add(new Vertex(end, weight));
+        this.parallelSSSP = null;
+    }
+
+
+    double getWeight(int start, int end) {
+        for (int k = 0; k < degree(start); k++) if (target(start, k) == end) return weight(start, k);
+        return Double.MAX_VALUE;
+    }
+
+    int degree(int u) {
+        return (offset == null ? 0 : offset[u + 1] - offset[u]) + this.edges.get(u).size();
+    }
+
+    // the k-th edge of u, off-heap edges first
+    int target(int u, int k) {
+        int base = offset == null ? 0 : offset[u + 1] - offset[u];
+        return k < base ? targets.get(offset[u] + k) : this.edges.get(u).get(k - base).index;
+    }
+
+    double weight(int u, int k) {
+        int base = offset == null ? 0 : offset[u + 1] - offset[u];
+        return k < base ? weights.get(offset[u] + k) : this.edges.get(u).get(k - base).weight;
+    }
+
+
+    String[] Dijkstra(int v0, int v1) {
+        double[] dist = dijkstraDistances(v0);
+        return route(v0, v1, dist, shortestPathTree(v0, dist));
+    }
+
+    double[] dijkstraDistances(int v0) {
+        return dijkstraDistances(new int[]{v0}, new double[]{0});
+    }
+
+    // several sources at once, sources[k] starting at distance initial[k] instead of 0
+    double[] dijkstraDistances(int[] sources, double[] initial) {
+        int v = this.v;
+        double[] dist = new double[v];  // dist[i] = min distance between the sources and vi
+
+        // get distance from the sources to every other vertex
+        Arrays.fill(dist, Double.MAX_VALUE);
+        PriorityQueue<Vertex> verticesAdjacentPQ = new PriorityQueue<>(this.v, new Vertex());
+        for (int k = 0; k < sources.length; k++) {
+            if (initial[k] >= dist[sources[k]]) continue;
+            dist[sources[k]] = initial[k];
+            verticesAdjacentPQ.add(new Vertex(sources[k], initial[k]));
+        }
+
+        /*
+        // initialize the visited array as all false and get distance from v0 to every other vertex
+        for (int i = 0; i < v; i++) {
+            visited[i] = false;
+            dist[i] = this.graph.dist[v0][i];
+        }
+        dist[v0] = 0;
+        visited[v0] = true;
+
+
+         outer loop i has not really meaning we just do (n-1) times of loops (n = #(V)) since we already know which the started vertex v0 is
+         the next step is a j loop traversing every vertex to find which unvisited vertex has min distance to v0
+         and another j loop to relax
+         Q: What is relax?
+         A: We find the unvisited vertex u with min distance and see if the path v0 -> u -> j has less distance than v0 -> j directly
+            (j is loop variable from 0 to n-1). In other words, take a 'shortcut'.
+
+        for (int i = 1; i < v; i++) {
+            int u = v0;
+            double min = INF;
+            for (int j = 0; j < v; j++)
+                if (!visited[j] && dist[j] < min) {  // update if the current vertex is not visited and it has the min distance
+                    u = j;
+                    min = dist[j];
+                }
+
+            visited[u] = true;
+            // relax
+            for (int j = 0; j < v; j++) {
+                if (!visited[j] && this.graph.dist[u][j] < INF) {
+                    dist[j] = Double.min(dist[j], this.graph.dist[u][j] + dist[u]);
+                }
+            }
+        }
+        // a very very slow version
+         */
+
+        /*
+        // a prototype with priority queue involved but with mistakes
+        PriorityQueue<Vertex> vertexPQ = new PriorityQueue<>(v, new Vertex());
+        vertexPQ.add(new Vertex(v0, 0));
+        while(!vertexPQ.isEmpty()) {
+            Vertex vertexClosestToV0 = vertexPQ.poll();
+            visited[vertexClosestToV0.index] = true; // THIS LINE IS WRONG AND SHOULD BE DELETED. A mistake I made.
+            for(int i = 0; i<this.edges.get(vertexClosestToV0.index).size(); i++) {
+                // relax vertices that are connected to the vertexClosestToV0
+                Vertex vertexToRelax = this.edges.get(vertexClosestToV0.index).get(i);
+                if(!visited[vertexToRelax.index]) {
+                    if(dist[vertexClosestToV0.index] + vertexToRelax.weight < dist[vertexToRelax.index]) {
+                        dist[vertexToRelax.index] = dist[vertexClosestToV0.index] + vertexToRelax.weight;
+                        prev[vertexToRelax.index] = vertexClosestToV0.index;
+                    }
+                    addedToPQ[vertexToRelax.index] = true; // THIS IS RIGHT, a better idea to record all the vertices
+                    // that are adjacent to the nodes we already visited, these vertices are the next to take into consideration to relax.
+                    vertexPQ.add(new Vertex(vertexToRelax.index, dist[vertexToRelax.index]));
+                }
+            }
+        }
+
+        ##
+        #  The version 1 code has a typical waste of resources as it traverses all the vertices including those who are not adjacent
+        #  to the vertices we already visited, hence visiting these vertices would simply do nothing but waste time let alone relaxing.
+        #  version 2 fixes as it focus on maintaining a priority queue which consists of vertices that are to be relaxed.
+        ##
+
+        */
+
+        /*
+        ##
+        #  version 3: marking a vertex as done the first time it is discovered (addedToPQ) kept the cost of the
+        #  first path found to it, not the cheapest one, e.g. 0 -> 1 (10), 0 -> 2 (1), 2 -> 1 (1) settled 1 at 10.
+        #  Every edge is relaxed now, and a polled entry whose vertex has been reached more cheaply since is skipped.
+        ##
+        */
+
+        int u;
+        while (!verticesAdjacentPQ.isEmpty()) {
+            Vertex vertexClosestToV0 = verticesAdjacentPQ.poll();
+            u = vertexClosestToV0.index;
+            if (vertexClosestToV0.weight > dist[u]) continue;  // stale entry
+            for (int k = 0; k < degree(u); k++) {
+                double w = weight(u, k);
+                int i = target(u, k);
+                if (w < Double.MAX_VALUE && w + dist[u] < dist[i]) {
+                    dist[i] = w + dist[u];
+                    verticesAdjacentPQ.add(new Vertex(i, dist[i]));
+                }
+            }
+        }
+        return dist;
+    }
+
+    int[] shortestPathTree(int v0, double[] dist) {
+        return shortestPathTree(new int[]{v0}, new double[]{0}, dist);
+    }
+
+    // prev[i] is the smallest vertex u on the earliest breadth first level with dist[u] + w == dist[i], level 0 being the
+    // sources still at their initial distance, which are their own prev. The tree depends only on dist, so both
+    // engines agree on it; -1 for unreachable vertices
+    int[] shortestPathTree(int[] sources, double[] initial, double[] dist) {
+        int[] prev = new int[v];
+        Arrays.fill(prev, -1);
+        boolean[] visited = new boolean[v];
+        int[] frontier = new int[v], next = new int[v];
+        int frontierSize = 0;
+        for (int k = 0; k < sources.length; k++) {
+            if (visited[sources[k]] || dist[sources[k]] != initial[k]) continue;
+            prev[sources[k]] = sources[k];
+            visited[sources[k]] = true;
+            frontier[frontierSize++] = sources[k];
+        }
+        while (frontierSize > 0) {
+            int nextSize = 0;
+            for (int n = 0; n < frontierSize; n++) {
+                int u = frontier[n];
+                for (int k = 0; k < degree(u); k++) {
+                    int i = target(u, k);
+                    double w = weight(u, k);
+                    if (visited[i] || w >= Double.MAX_VALUE || dist[u] + w != dist[i]) continue;
+                    if (prev[i] == -1) {
+                        prev[i] = u;
+                        next[nextSize++] = i;
+                    } else {
+                        prev[i] = Math.min(prev[i], u);
+                    }
+                }
+            }
+            for (int n = 0; n < nextSize; n++) visited[next[n]] = true;
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            frontierSize = nextSize;
+        }
+        return prev;
+    }
+
+    // delta-stepping on the common fork join pool, same dist / prev as Dijkstra
+    String[] DeltaStepping(int v0, int v1) {
+        ParallelSSSP parallelSSSP = parallelSSSP();
+        parallelSSSP.run(v0);
+        return route(v0, v1, parallelSSSP.dist(), parallelSSSP.prev());
+    }
+
+    private ParallelSSSP parallelSSSP() {
+        if (parallelSSSP == null) parallelSSSP = new ParallelSSSP(this, ParallelSSSP.defaultDelta(this), ForkJoinPool.commonPool());
+        return parallelSSSP;
+    }
+
+    /**
+     * Shortest route from any of the sources to any of the targets, where sources[k] costs initial[k] to reach
+     * and targets[k] costs remaining[k] more to leave. Ties between targets go to the one listed first.
+     * The first line is from start and the last hop to end; null if no target can be reached.
+     */
+    String[] Dijkstra(int[] sources, double[] initial, int[] targets, double[] remaining) {
+        double[] dist = dijkstraDistances(sources, initial);
+        return route(sources, initial, targets, remaining, dist, shortestPathTree(sources, initial, dist));
+    }
+
+    String[] DeltaStepping(int[] sources, double[] initial, int[] targets, double[] remaining) {
+        ParallelSSSP parallelSSSP = parallelSSSP();
+        parallelSSSP.run(sources, initial);
+        return route(sources, initial, targets, remaining, parallelSSSP.dist(), parallelSSSP.prev());
+    }
+
+    String[] route(int[] sources, double[] initial, int[] targets, double[] remaining, double[] dist, int[] prev) {
+        int best = -1;
+        for (int k = 0; k < targets.length; k++) {
+            if (prev[targets[k]] == -1) continue;
+            if (best == -1 || dist[targets[k]] + remaining[k] < dist[targets[best]] + remaining[best]) best = k;
+        }
+        if (best == -1) return null;  // no route exists
+
+        List<Integer> RouteArrayList = new ArrayList<>();
+        for (int node = targets[best]; ; node = prev[node]) {
+            RouteArrayList.add(node);
+            if (prev[node] == node) break;
+        }
+        Collections.reverse(RouteArrayList);
+        int first = RouteArrayList.get(0), last = RouteArrayList.get(RouteArrayList.size() - 1);
+        double firstCost = Double.MAX_VALUE;
+        for (int k = 0; k < sources.length; k++) if (sources[k] == first) firstCost = Math.min(firstCost, initial[k]);
+
+        String[] res = new String[RouteArrayList.size() + 2];
+        res[0] = "from start to index " + first + " with cost of " + firstCost;
+        for (int i = 0; i < RouteArrayList.size() - 1; i++) {
+            res[i + 1] = "from index " + RouteArrayList.get(i) + " to index " + RouteArrayList.get(i+1)
+                    + " with cost of " + getWeight(RouteArrayList.get(i), RouteArrayList.get(i+1));
+        }
+        res[res.length - 2] = "from index " + last + " to end with cost of " + remaining[best];
+        res[res.length - 1] = "total cost: " + (dist[last] + remaining[best]);
+        return res;
+    }
+
+    String[] route(int v0, int v1, double[] dist, int[] prev) {
+        if (prev[v1] == -1 || prev[v1] == 0 || dist[v1] == 0) return null;  // no route exists
+
+        List<Integer> RouteArrayList = new ArrayList<>();
+        RouteArrayList.add(v1);
+        int node = prev[v1];
+        while (node != v0) {
+            RouteArrayList.add(node);
+            node = prev[node];
+        }
+        RouteArrayList.add(v0);
+        Collections.reverse(RouteArrayList);
+        String[] res = new String[RouteArrayList.size()];
+
+        double cost;
+        for (int i = 0; i < RouteArrayList.size() - 1; i++) {
+            cost = getWeight(RouteArrayList.get(i), RouteArrayList.get(i+1));
+            res[i] = "from index " + RouteArrayList.get(i) + " to index " + RouteArrayList.get(i+1) + " with cost of " + cost;
+        }
+        res[RouteArrayList.size() - 1] = "total cost: " + dist[v1];
+        return res;
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.*;
+import java.util.*;
+
+// departures of every stop sorted by time, each stop's entries packed as (departure seconds, trip number, stop_sequence),
+// where tripID(trip number) gives the trip_id
+class DepartureBoard {
+    static final int DEPARTURE = 0, TRIP = 1, SEQUENCE = 2;
+    private static final int STRIDE = 3;
+    // query results carry a fourth field, the service day the trip belongs to: 0 for the day of the query,
+    // -1 for the previous day, whose times past 24:00:00 have been brought back by a day
+    static final int SERVICE_DAY = 3;
+    static final int RESULT_STRIDE = 4;
+    private static final int DAY = 24 * 3600;
+
+    private int[][] board;  // board[stopID], null if the stop has no departures
+    private final TripIDs tripIDs;
+
+    // stops each trip calls at, for putTrip and removeTrip: trip indexedTrips[t] calls at tripStopIDs[tripStart[t]]
+    // until tripStopIDs[tripStart[t + 1]]; trips changed since the board was built are looked up in changedTrips first
+    private final int[] indexedTrips, tripStart, tripStopIDs;
+    private final Map<Integer, int[]> changedTrips = new HashMap<>();
+
+    // the stop_times rows the board is built from, read twice so they never have to be copied
+    private interface Rows {
+        int size();
+        int trip(int row);  // the trip number in tripIDs
+        int stop(int row);
+        int sequence(int row);
+        int departure(int row);  // -1 skips the row
+    }
+
+    DepartureBoard(String[] trips, int[] stops, int[] sequences, int[] departures, int rows) {
+        this(new TripIDs(), trips, stops, sequences, departures, rows);
+    }
+
+    private DepartureBoard(TripIDs tripIDs, String[] trips, int[] stops, int[] sequences, int[] departures, int rows) {
+        this(numbered(tripIDs, trips, rows), stops, sequences, departures, rows, tripIDs);
+    }
+
+    private DepartureBoard(int[] trips, int[] stops, int[] sequences, int[] departures, int rows, TripIDs tripIDs) {
+        this(new Rows() {
+            public int size() { return rows; }
+            public int trip(int row) { return trips[row]; }
+            public int stop(int row) { return stops[row]; }
+            public int sequence(int row) { return sequences[row]; }
+            public int departure(int row) { return departures[row]; }
+        }, tripIDs);
+    }
+
+    private DepartureBoard(Rows rows, TripIDs tripIDs) {
+        this.tripIDs = tripIDs;
+        int largestStopID = 0;
+        for (int row = 0; row < rows.size(); row++) if (rows.departure(row) >= 0) largestStopID = Math.max(largestStopID, rows.stop(row));
+        int[] count = new int[largestStopID + 1];
+        for (int row = 0; row < rows.size(); row++) if (rows.departure(row) >= 0) count[rows.stop(row)]++;
+        this.board = new int[largestStopID + 1][];
+        for (int stopID = 0; stopID <= largestStopID; stopID++) if (count[stopID] > 0) board[stopID] = new int[count[stopID] * STRIDE];
+
+        Arrays.fill(count, 0);
+        int total = 0;
+        for (int row = 0; row < rows.size(); row++) {
+            if (rows.departure(row) < 0) continue;
+            int[] entries = board[rows.stop(row)];
+            int at = count[rows.stop(row)]++ * STRIDE;
+            entries[at + DEPARTURE] = rows.departure(row);
+            entries[at + TRIP] = rows.trip(row);
+            entries[at + SEQUENCE] = rows.sequence(row);
+            total++;
+        }
+        for (int[] entries : board) if (entries != null) sort(entries);
+
+        // (trip, stop) pairs from the board, sorted and deduplicated into the trip -> stops index
+        long[] pairs = new long[total];
+        int n = 0;
+        for (int stopID = 0; stopID <= largestStopID; stopID++) {
+            if (board[stopID] == null) continue;
+            for (int at = 0; at < board[stopID].length; at += STRIDE) pairs[n++] = (long) board[stopID][at + TRIP] << 32 | stopID;
+        }
+        Arrays.sort(pairs);
+        int trips = 0, distinctPairs = 0;
+        for (int k = 0; k < total; k++) {
+            if (k > 0 && pairs[k] == pairs[k - 1]) continue;
+            if (k == 0 || pairs[k] >> 32 != pairs[k - 1] >> 32) trips++;
+            pairs[distinctPairs++] = pairs[k];
+        }
+        this.indexedTrips = new int[trips];
+        this.tripStart = new int[trips + 1];
+        this.tripStopIDs = new int[distinctPairs];
+        int t = -1;
+        for (int k = 0; k < distinctPairs; k++) {
+            if (k == 0 || pairs[k] >> 32 != pairs[k - 1] >> 32) {
+                indexedTrips[++t] = (int) (pairs[k] >> 32);
+                tripStart[t] = k;
+            }
+            tripStopIDs[k] = (int) pairs[k];
+        }
+        tripStart[trips] = distinctPairs;
+    }
+
+    static DepartureBoard load(String path) throws IOException {
+        int capacity = Algorithm2FinalProject.getLineNumber(new File(path));
+        int[] trips = new int[capacity], stops = new int[capacity], sequences = new int[capacity], departures = new int[capacity];
+        TripIDs tripIDs = new TripIDs();
+        int rows = 0;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
+            bufferedReader.readLine();
+            String currentLine = bufferedReader.readLine();
+            while (currentLine != null) {
+                String[] fields = currentLine.split(",");
+                try {
+                    departures[rows] = Algorithm2FinalProject.timeToSeconds(fields[2]);
+                    stops[rows] = Integer.parseInt(fields[3].trim());
+                    sequences[rows] = Integer.parseInt(fields[4].trim());
+                    if (departures[rows] >= 0) trips[rows++] = tripIDs.intern(fields[0].trim());
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
+                }
+                currentLine = bufferedReader.readLine();
+            }
+        }
+        return new DepartureBoard(trips, stops, sequences, departures, rows, tripIDs);
+    }
+
+    // reads the off-heap columns in place and numbers trips the way they do
+    static DepartureBoard from(StopTimesColumns columns) {
+        return new DepartureBoard(new Rows() {
+            public int size() { return columns.rows(); }
+            public int trip(int row) { return columns.get(StopTimesColumns.TRIP, row); }
+            public int stop(int row) { return columns.get(StopTimesColumns.STOP, row); }
+            public int sequence(int row) { return columns.get(StopTimesColumns.SEQUENCE, row); }
+            public int departure(int row) { return columns.get(StopTimesColumns.DEPARTURE, row); }
+        }, columns.tripIDs());
+    }
+
+    private static int[] numbered(TripIDs tripIDs, String[] trips, int rows) {
+        int[] numbers = new int[rows];
+        for (int row = 0; row < rows; row++) numbers[row] = tripIDs.intern(trips[row]);
+        return numbers;
+    }
+
+    // the trip_id of a trip number in the packed results
+    String tripID(int trip) {
+        return tripIDs.get(trip);
+    }
+
+    /**
+     * Returns the next {@code n} departures from a stop at or after {@code after} seconds, as packed results
+     * in departure order. Trips of the previous service day still running after midnight are included,
+     * with their departure given on the query's day. A negative {@code n} gives no departures.
+     */
+    int[] next(int stopID, int after, int n) {
+        int[] entries = entriesOf(stopID);
+        return merge(entries, lowerBound(entries, after), entries.length / STRIDE,
+                lowerBound(entries, (long) after + DAY), entries.length / STRIDE, n);
+    }
+
+    /**
+     * Returns the departures from a stop between {@code from} and {@code to} seconds inclusive, as packed results
+     * like {@link #next}, including the previous service day's trips that run past midnight into the window.
+     * The window is empty if {@code from} is after {@code to}.
+     */
+    int[] window(int stopID, int from, int to) {
+        int[] entries = entriesOf(stopID);
+        return merge(entries, lowerBound(entries, from), lowerBound(entries, (long) to + 1),
+                lowerBound(entries, (long) from + DAY), lowerBound(entries, (long) to + DAY + 1), Integer.MAX_VALUE);
+    }
+
+    // replaces every departure of the trip, rebuilding only the stops it called at or now calls at
+    void putTrip(String tripID, int[] stopIDs, int[] sequences, int[] departures) {
+        removeTrip(tripID);
+        int trip = tripIDs.intern(tripID);
+        int largestStopID = board.length - 1;
+        for (int stopID : stopIDs) largestStopID = Math.max(largestStopID, stopID);
+        if (largestStopID >= board.length) board = Arrays.copyOf(board, largestStopID + 1);
+
+        for (int i = 0; i < stopIDs.length; i++) {
+            int[] entries = entriesOf(stopIDs[i]);
+            int at = lowerBound(entries, (long) departures[i] + 1) * STRIDE;  // after any equal departure, like a stable sort
+            int[] grown = new int[entries.length + STRIDE];
+            System.arraycopy(entries, 0, grown, 0, at);
+            grown[at + DEPARTURE] = departures[i];
+            grown[at + TRIP] = trip;
+            grown[at + SEQUENCE] = sequences[i];
+            System.arraycopy(entries, at, grown, at + STRIDE, entries.length - at);
+            board[stopIDs[i]] = grown;
+        }
+        changedTrips.put(trip, Arrays.stream(stopIDs).distinct().toArray());
+    }
+
+    void removeTrip(String tripID) {
+        int trip = tripIDs.numberOf(tripID);
+        int[] stopIDs = trip < 0 ? new int[0] : stopsOf(trip);
+        if (stopIDs.length == 0) return;
+        changedTrips.put(trip, new int[0]);
+        for (int stopID : stopIDs) {
+            int[] entries = board[stopID];
+            int kept = 0;
+            for (int at = 0; at < entries.length; at += STRIDE) {
+                if (entries[at + TRIP] == trip) continue;
+                System.arraycopy(entries, at, entries, kept, STRIDE);
+                kept += STRIDE;
+            }
+            board[stopID] = kept == 0 ? null : Arrays.copyOf(entries, kept);
+        }
+    }
+
+    private int[] stopsOf(int trip) {
+        int[] stopIDs = changedTrips.get(trip);
+        if (stopIDs != null) return stopIDs;
+        int t = Arrays.binarySearch(indexedTrips, trip);
+        return t < 0 ? new int[0] : Arrays.copyOfRange(tripStopIDs, tripStart[t], tripStart[t + 1]);
+    }
+
+    private int[] entriesOf(int stopID) {
+        if (stopID < 0 || stopID >= board.length || board[stopID] == null) return new int[0];
+        return board[stopID];
+    }
+
+    // first entry whose departure is >= time
+    private static int lowerBound(int[] entries, long time) {
+        int lo = 0, hi = entries.length / STRIDE;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries[mid * STRIDE + DEPARTURE] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // entries i..iEnd of today and j..jEnd of the previous service day, in the order they actually depart;
+    // a range that ends before it starts, or a negative limit, counts as empty
+    private static int[] merge(int[] entries, int i, int iEnd, int j, int jEnd, int limit) {
+        int n = (int) Math.max(0, Math.min(limit, (long) Math.max(0, iEnd - i) + Math.max(0, jEnd - j)));
+        int[] res = new int[n * RESULT_STRIDE];
+        for (int k = 0; k < n; k++) {
+            boolean today = j >= jEnd || (i < iEnd && entries[i * STRIDE + DEPARTURE] <= entries[j * STRIDE + DEPARTURE] - DAY);
+            int from = (today ? i++ : j++) * STRIDE, to = k * RESULT_STRIDE;
+            res[to + DEPARTURE] = entries[from + DEPARTURE] - (today ? 0 : DAY);
+            res[to + TRIP] = entries[from + TRIP];
+            res[to + SEQUENCE] = entries[from + SEQUENCE];
+            res[to + SERVICE_DAY] = today ? 0 : -1;
+        }
+        return res;
+    }
+
+    // sorts the packed entries by departure, keeping file order between equal departures
+    private static void sort(int[] entries) {
+        int n = entries.length / STRIDE;
+        long[] keys = new long[n];
+        for (int k = 0; k < n; k++) keys[k] = (long) entries[k * STRIDE + DEPARTURE] << 32 | k;
+        Arrays.sort(keys);
+        int[] copy = entries.clone();
+        for (int k = 0; k < n; k++) System.arraycopy(copy, (int) keys[k] * STRIDE, entries, k * STRIDE, STRIDE);
+    }
+}
@@ -0,0 +1,283 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// delta-stepping single source shortest paths: vertices are kept in buckets of width delta, and each bucket
+// relaxes its light edges (weight <= delta) until it empties, then its heavy edges once, each round on a fork join pool
+class ParallelSSSP {
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final int CHUNK = 128;               // frontier vertices per fork join task
+    private static final int PARALLEL_THRESHOLD = 2 * CHUNK;  // smaller frontiers are relaxed on the calling thread
+
+    private final int v;
+    private final int[] offset;    // edges of u are offset[u] until offset[u + 1], light ones before lightEnd[u]
+    private final int[] lightEnd;
+    // split into light and heavy in direct buffers, so only the two per vertex arrays above live on the heap
+    private final IntBuffer target;
+    private final DoubleBuffer weight;
+    private final double delta;
+    private final ForkJoinPool pool;
+
+    private AtomicLongArray dist;  // raw bits of non-negative doubles, which order the same way as the doubles
+    private int[] prev;
+
+    ParallelSSSP(DGraph graph, double delta, ForkJoinPool pool) {
+        this.v = graph.v;
+        this.delta = delta;
+        this.pool = pool;
+        this.offset = new int[v + 1];
+        this.lightEnd = new int[v];
+        pool.submit(() -> IntStream.range(0, v).parallel().forEach(u -> {
+            for (int k = 0; k < graph.degree(u); k++) if (graph.weight(u, k) < Double.MAX_VALUE) offset[u + 1]++;
+        })).join();
+        for (int u = 0; u < v; u++) offset[u + 1] += offset[u];
+        this.target = ByteBuffer.allocateDirect(offset[v] * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        this.weight = ByteBuffer.allocateDirect(offset[v] * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        pool.submit(() -> IntStream.range(0, v).parallel().forEach(u -> {
+            int light = offset[u], heavy = offset[u + 1];
+            for (int k = 0; k < graph.degree(u); k++) {
+                double w = graph.weight(u, k);
+                if (w >= Double.MAX_VALUE) continue;
+                int e = w <= delta ? light++ : --heavy;
+                target.put(e, graph.target(u, k));  // absolute puts, each task writes only its own vertices' edges
+                weight.put(e, w);
+            }
+            lightEnd[u] = light;
+        })).join();
+    }
+
+    // the mean edge weight, so that a bucket holds about one hop of the network
+    static double defaultDelta(DGraph graph) {
+        double total = 0;
+        int count = 0;
+        for (int u = 0; u < graph.v; u++) {
+            for (int k = 0; k < graph.degree(u); k++) {
+                if (graph.weight(u, k) >= Double.MAX_VALUE) continue;
+                total += graph.weight(u, k);
+                count++;
+            }
+        }
+        return count == 0 || total == 0 ? 1 : total / count;
+    }
+
+    void run(int source) {
+        run(new int[]{source}, new double[]{0});
+    }
+
+    // several sources at once, sources[k] starting at distance initial[k] instead of 0
+    void run(int[] sources, double[] initial) {
+        dist = new AtomicLongArray(v);
+        forAll(i -> dist.set(i, Double.doubleToRawLongBits(Double.MAX_VALUE)));
+        for (int k = 0; k < sources.length; k++) relaxTo(sources[k], initial[k]);
+        AtomicIntegerArray claimedIn = new AtomicIntegerArray(v);   // the round a vertex was last relaxed in
+        AtomicIntegerArray settledIn = new AtomicIntegerArray(v);   // 1 + the bucket a vertex was last settled in
+
+        // bucket k is a list of parts, each an array some relax task filled, so nothing is copied to merge them
+        List<List<int[]>> buckets = new ArrayList<>();
+        Placed seeds = new Placed(0);
+        for (int source : sources) seeds.add(source);
+        seeds.done().into(buckets);
+        int round = 0;
+        for (int k = 0; k < buckets.size(); k++) {
+            int bucket = k;
+            List<int[]> settled = new ArrayList<>();
+            while (!buckets.get(k).isEmpty()) {
+                List<int[]> parts = buckets.get(k);
+                buckets.set(k, new ArrayList<>());
+                int stamp = ++round;
+                for (Placed placed : forParts(parts, (part, from, to) -> {
+                    Placed res = new Placed(bucket);
+                    for (int n = from; n < to; n++) {
+                        int u = part[n];
+                        // stale entries, and duplicates another task of this round has already taken, are skipped
+                        if (bucketOf(u) != bucket || claimedIn.getAndSet(u, stamp) == stamp) continue;
+                        if (settledIn.getAndSet(u, bucket + 1) != bucket + 1) res.settled.add(u);
+                        relax(u, offset[u], lightEnd[u], res);
+                    }
+                    return res.done();
+                })) {
+                    placed.into(buckets);
+                    settled.add(placed.settledVertices);
+                }
+            }
+            for (Placed placed : forParts(settled, (part, from, to) -> {
+                Placed res = new Placed(bucket);
+                for (int n = from; n < to; n++) {
+                    int u = part[n];
+                    relax(u, lightEnd[u], offset[u + 1], res);
+                }
+                return res.done();
+            })) placed.into(buckets);
+        }
+        prev = shortestPathTree(sources, initial);
+    }
+
+    double[] dist() {
+        double[] res = new double[v];
+        forAll(i -> res[i] = Double.longBitsToDouble(dist.get(i)));
+        return res;
+    }
+
+    int[] prev() {
+        return prev;
+    }
+
+    private int bucketOf(int i) {
+        return (int) Math.min(Double.longBitsToDouble(dist.get(i)) / delta, Integer.MAX_VALUE - 1);
+    }
+
+    // relaxes edges from until to of u, placing every target whose distance went down into its bucket
+    private void relax(int u, int from, int to, Placed placed) {
+        double du = Double.longBitsToDouble(dist.get(u));
+        for (int e = from; e < to; e++) {
+            int i = target.get(e);
+            if (relaxTo(i, du + weight.get(e))) placed.add(i);
+        }
+    }
+
+    // atomic min on the packed distance
+    private boolean relaxTo(int i, double candidate) {
+        long next = Double.doubleToRawLongBits(candidate);
+        long current = dist.get(i);
+        while (next < current) {
+            if (dist.compareAndSet(i, current, next)) return true;
+            current = dist.get(i);
+        }
+        return false;
+    }
+
+    // one relax task's output: the vertices it improved, by bucket from the one being relaxed on, and the ones it settled
+    private final class Placed {
+        private final int base;
+        private IntBag[] byBucket = new IntBag[4];
+        private int[][] parts;
+        private final IntBag settled = new IntBag();
+        private int[] settledVertices;
+
+        Placed(int base) {
+            this.base = base;
+        }
+
+        void add(int i) {
+            int b = Math.max(bucketOf(i) - base, 0);
+            if (b >= byBucket.length) byBucket = Arrays.copyOf(byBucket, Math.max(b + 1, byBucket.length * 2));
+            if (byBucket[b] == null) byBucket[b] = new IntBag();
+            byBucket[b].add(i);
+        }
+
+        // trims the bags on the task's own thread, before they are handed back
+        Placed done() {
+            parts = new int[byBucket.length][];
+            for (int b = 0; b < byBucket.length; b++) if (byBucket[b] != null) parts[b] = byBucket[b].toArray();
+            settledVertices = settled.toArray();
+            byBucket = null;
+            return this;
+        }
+
+        void into(List<List<int[]>> buckets) {
+            for (int b = 0; b < parts.length; b++) {
+                if (parts[b] == null) continue;
+                while (buckets.size() <= base + b) buckets.add(new ArrayList<>());
+                buckets.get(base + b).add(parts[b]);
+            }
+        }
+    }
+
+    // runs task over every part in slices of at most CHUNK vertices, on the pool when there are enough of them
+    private <T> List<T> forParts(List<int[]> parts, PartTask<T> task) {
+        int total = 0, slices = 0;
+        for (int[] part : parts) {
+            total += part.length;
+            slices += (part.length + CHUNK - 1) / CHUNK;
+        }
+        List<T> res = new ArrayList<>(parts.size());
+        if (total < PARALLEL_THRESHOLD) {
+            for (int[] part : parts) if (part.length > 0) res.add(task.run(part, 0, part.length));
+            return res;
+        }
+        int[][] slicePart = new int[slices][];
+        int[] sliceFrom = new int[slices];
+        int s = 0;
+        for (int[] part : parts) {
+            for (int from = 0; from < part.length; from += CHUNK) {
+                slicePart[s] = part;
+                sliceFrom[s++] = from;
+            }
+        }
+        return pool.submit(() -> IntStream.range(0, slicePart.length).parallel()
+                .mapToObj(c -> task.run(slicePart[c], sliceFrom[c], Math.min(slicePart[c].length, sliceFrom[c] + CHUNK)))
+                .collect(Collectors.toList())).join();
+    }
+
+    // body for every vertex, on the pool
+    private void forAll(IntConsumer body) {
+        pool.submit(() -> IntStream.range(0, v).parallel().forEach(body)).join();
+    }
+
+    private interface PartTask<T> {
+        T run(int[] part, int from, int to);
+    }
+
+    // the same tree as DGraph.shortestPathTree, one breadth first level per round with the level's vertices in parallel;
+    // a vertex's level is claimed once, but every tight edge from the level before still offers its parent
+    private int[] shortestPathTree(int[] sources, double[] initial) {
+        double[] d = dist();
+        AtomicIntegerArray parent = new AtomicIntegerArray(v);
+        AtomicIntegerArray level = new AtomicIntegerArray(v);
+        forAll(i -> {
+            parent.set(i, NONE);
+            level.set(i, NONE);
+        });
+        IntBag roots = new IntBag();
+        for (int k = 0; k < sources.length; k++) {
+            if (level.get(sources[k]) == 0 || d[sources[k]] != initial[k]) continue;
+            parent.set(sources[k], sources[k]);
+            level.set(sources[k], 0);
+            roots.add(sources[k]);
+        }
+
+        List<int[]> frontier = Collections.singletonList(roots.toArray());
+        for (int l = 0; !frontier.isEmpty(); l++) {
+            int current = l;
+            frontier = forParts(frontier, (part, from, to) -> {
+                IntBag children = new IntBag();
+                for (int n = from; n < to; n++) {
+                    int u = part[n];
+                    for (int e = offset[u]; e < offset[u + 1]; e++) {
+                        int i = target.get(e);
+                        if (level.get(i) <= current || d[u] + weight.get(e) != d[i]) continue;
+                        parent.accumulateAndGet(i, u, Math::min);
+                        if (level.compareAndSet(i, NONE, current + 1)) children.add(i);
+                    }
+                }
+                return children.toArray();
+            });
+        }
+
+        int[] res = new int[v];
+        forAll(i -> res[i] = parent.get(i) == NONE ? -1 : parent.get(i));
+        return res;
+    }
+
+    private static class IntBag {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
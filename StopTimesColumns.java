@@ -0,0 +1,153 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// stop_times.txt kept column by column outside the java heap, either in direct buffers or in a mapped cache file
+class StopTimesColumns {
+    static final int TRIP = 0, STOP = 1, SEQUENCE = 2, ARRIVAL = 3, DEPARTURE = 4;
+    private static final int COLUMNS = 5;
+    // cache file header: magic, version, row count, column capacity, the size, mtime and path of the source it was built from,
+    // and the length of the trip id block that follows the columns
+    private static final int MAGIC = 0x53544331, VERSION = 2;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final IntBuffer[] columns;
+    private final int rows;
+    private final TripIDs tripIDs;  // the TRIP column holds trip numbers, this gives back their trip_id
+
+    private StopTimesColumns(IntBuffer[] columns, int rows, TripIDs tripIDs) {
+        this.columns = columns;
+        this.rows = rows;
+        this.tripIDs = tripIDs;
+    }
+
+    int rows() {
+        return this.rows;
+    }
+
+    int get(int column, int row) {
+        return this.columns[column].get(row);
+    }
+
+    String tripID(int trip) {
+        return this.tripIDs.get(trip);
+    }
+
+    TripIDs tripIDs() {
+        return this.tripIDs;
+    }
+
+    /**
+     * Loads stop_times.txt into off-heap columns. Trip ids are stored as their number in {@link #tripIDs()},
+     * and times as seconds after midnight, or -1 if the field is malformed.
+     * @param path the stop_times.txt file
+     * @param cachePath a file to map the columns into, reused while its header matches the size, mtime and path
+     *     of {@code path}; {@code null} keeps the columns in direct buffers instead
+     */
+    static StopTimesColumns load(String path, String cachePath) throws IOException {
+        File source = new File(path);
+        long sourceLength = source.length(), sourceModified = source.lastModified();
+        int capacity = Algorithm2FinalProject.getLineNumber(source);
+        if (cachePath == null) {
+            IntBuffer[] columns = new IntBuffer[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++)
+                columns[c] = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            TripIDs tripIDs = new TripIDs();
+            return new StopTimesColumns(columns, fill(source, columns, tripIDs), tripIDs);
+        }
+
+        Path cache = Paths.get(cachePath).toAbsolutePath();
+        StopTimesColumns cached = open(cache, source, sourceLength, sourceModified);
+        if (cached != null) return cached;
+
+        // built in a temporary file and only renamed over the cache once every row is in and the header is written,
+        // so a failed or killed load never leaves a cache that looks valid
+        Path temp = Files.createTempFile(cache.getParent(), cache.getFileName().toString(), ".tmp");
+        StopTimesColumns loaded = null;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            IntBuffer[] columns = map(channel, FileChannel.MapMode.READ_WRITE, capacity);
+            TripIDs tripIDs = new TripIDs();
+            int rows = fill(source, columns, tripIDs);
+            ByteBuffer tripBytes = ByteBuffer.wrap(tripIDs.toBytes());
+            for (long position = columnsEnd(capacity); tripBytes.hasRemaining(); ) position += channel.write(tripBytes, position);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(capacity)
+                    .putLong(sourceLength).putLong(sourceModified).putInt(source.getCanonicalPath().hashCode())
+                    .putLong(tripBytes.capacity());
+            header.force();
+            loaded = new StopTimesColumns(columns, rows, tripIDs);
+        } finally {
+            if (loaded == null) Files.deleteIfExists(temp);
+        }
+        try {
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return loaded;
+    }
+
+    // the cached columns if the cache is complete and was built from this exact source, otherwise null
+    private static StopTimesColumns open(Path cache, File source, long sourceLength, long sourceModified) throws IOException {
+        if (!Files.isRegularFile(cache) || Files.size(cache) < HEADER_BYTES) return null;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.nativeOrder());
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) return null;
+            int rows = header.getInt(), capacity = header.getInt();
+            if (header.getLong() != sourceLength || header.getLong() != sourceModified
+                    || header.getInt() != source.getCanonicalPath().hashCode()) return null;
+            long tripBytes = header.getLong();
+            if (rows < 0 || rows > capacity || tripBytes < 0 || tripBytes > Integer.MAX_VALUE
+                    || channel.size() != columnsEnd(capacity) + tripBytes) return null;
+            TripIDs tripIDs = TripIDs.fromBytes(channel.map(FileChannel.MapMode.READ_ONLY, columnsEnd(capacity), tripBytes));
+            return new StopTimesColumns(map(channel, FileChannel.MapMode.READ_ONLY, capacity), rows, tripIDs);
+        }
+    }
+
+    // parses every well formed row into the columns, numbering its trip id in tripIDs, and returns how many there were
+    private static int fill(File source, IntBuffer[] columns, TripIDs tripIDs) throws IOException {
+        int rows = 0;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(source))) {
+            bufferedReader.readLine();
+            String currentLine = bufferedReader.readLine();
+            while (currentLine != null) {
+                String[] fields = currentLine.split(",");
+                try {
+                    int stopID = Integer.parseInt(fields[3].trim());
+                    int stopSequence = Integer.parseInt(fields[4].trim());
+                    columns[TRIP].put(rows, tripIDs.intern(fields[0].trim()));
+                    columns[STOP].put(rows, stopID);
+                    columns[SEQUENCE].put(rows, stopSequence);
+                    columns[ARRIVAL].put(rows, Algorithm2FinalProject.timeToSeconds(fields[1]));
+                    columns[DEPARTURE].put(rows, Algorithm2FinalProject.timeToSeconds(fields[2]));
+                    rows++;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
+                }
+                currentLine = bufferedReader.readLine();
+            }
+        }
+        return rows;
+    }
+
+    private static long columnsEnd(int capacity) {
+        return HEADER_BYTES + (long) COLUMNS * capacity * Integer.BYTES;
+    }
+
+    private static IntBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int capacity) throws IOException {
+        IntBuffer[] columns = new IntBuffer[COLUMNS];
+        long columnBytes = (long) capacity * Integer.BYTES;
+        for (int c = 0; c < COLUMNS; c++)
+            columns[c] = channel.map(mode, HEADER_BYTES + c * columnBytes, columnBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+        return columns;
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.*;
+import java.util.*;
+
+// uniform grid over the stop coordinates, projected to metres around the middle of the feed so that
+// nearby stops are found by looking at the query cell and then rings of cells around it
+class StopsGrid {
+    private static final double METRES_PER_DEGREE = 111320;
+    private static final int STOPS_PER_CELL = 2;
+
+    private final int[] stopIDs;      // sorted by cell, cell c holds positions cellStart[c] until cellStart[c + 1]
+    private final double[] x, y;      // metres, same order as stopIDs
+    private final int[] cellStart;
+    private final int[] positionOf;   // stop id -> position, -1 if the id is not a stop
+    private final int columns, rows;
+    private final double originLat, originLon, cosLat, minX, minY, cellSize;
+
+    StopsGrid(int[] ids, double[] lat, double[] lon) {
+        int n = ids.length;
+        double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE, lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+        int largestStopID = 0;
+        for (int i = 0; i < n; i++) {
+            latMin = Math.min(latMin, lat[i]);
+            latMax = Math.max(latMax, lat[i]);
+            lonMin = Math.min(lonMin, lon[i]);
+            lonMax = Math.max(lonMax, lon[i]);
+            largestStopID = Math.max(largestStopID, ids[i]);
+        }
+        if (n == 0) latMin = latMax = lonMin = lonMax = 0;
+        this.originLat = (latMin + latMax) / 2;
+        this.originLon = (lonMin + lonMax) / 2;
+        this.cosLat = Math.cos(Math.toRadians(originLat));
+        this.minX = projectX(lonMin);
+        this.minY = projectY(latMin);
+        double width = projectX(lonMax) - minX, height = projectY(latMax) - minY;
+        this.cellSize = Math.max(1, Math.sqrt(width * height * STOPS_PER_CELL / Math.max(n, 1)));
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+
+        // counting sort of the stops by cell
+        int[] cellOf = new int[n];
+        this.cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = cell(column(projectX(lon[i])), row(projectY(lat[i])));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) cellStart[c + 1] += cellStart[c];
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        this.stopIDs = new int[n];
+        this.x = new double[n];
+        this.y = new double[n];
+        this.positionOf = new int[largestStopID + 1];
+        Arrays.fill(positionOf, -1);
+        for (int i = 0; i < n; i++) {
+            int position = next[cellOf[i]]++;
+            stopIDs[position] = ids[i];
+            x[position] = projectX(lon[i]);
+            y[position] = projectY(lat[i]);
+            positionOf[ids[i]] = position;
+        }
+    }
+
+    static StopsGrid load(String path) throws IOException {
+        int capacity = Algorithm2FinalProject.getLineNumber(new File(path));
+        int[] ids = new int[capacity];
+        double[] lat = new double[capacity], lon = new double[capacity];
+        int n = 0;
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
+            String stopsInfoLine = bufferedReader.readLine();
+            while (stopsInfoLine != null) {
+                String[] fields = stopsInfoLine.split(",");
+                try {
+                    ids[n] = Integer.parseInt(fields[0].trim());
+                    lat[n] = Double.parseDouble(fields[4].trim());
+                    lon[n] = Double.parseDouble(fields[5].trim());
+                    n++;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {  // header or stop without coordinates
+                }
+                stopsInfoLine = bufferedReader.readLine();
+            }
+        }
+        return new StopsGrid(Arrays.copyOf(ids, n), Arrays.copyOf(lat, n), Arrays.copyOf(lon, n));
+    }
+
+    double metresTo(double lat, double lon, int stopID) {
+        int position = positionOf[stopID];
+        return Math.hypot(projectX(lon) - x[position], projectY(lat) - y[position]);
+    }
+
+    /**
+     * Returns the ids of the {@code k} stops closest to the given coordinates, closest first.
+     */
+    int[] nearest(double lat, double lon, int k) {
+        double qx = projectX(lon), qy = projectY(lat);
+        int qc = Math.max(0, column(qx)), qr = Math.max(0, row(qy));
+        k = Math.min(k, stopIDs.length);
+        if (k <= 0) return new int[0];
+        int[] best = new int[k];          // positions, sorted by distance
+        double[] bestDist = new double[k];
+        int found = 0;
+        for (int r = 0; found < k || bestDist[k - 1] > (r - 1) * cellSize; r++) {
+            if (r > columns && r > rows) break;
+            for (int row = qr - r; row <= qr + r; row++) {
+                if (row < 0 || row >= rows) continue;
+                for (int column = qc - r; column <= qc + r; column++) {
+                    if (column < 0 || column >= columns) continue;
+                    if (row != qr - r && row != qr + r && column != qc - r && column != qc + r) continue;  // ring only
+                    int c = cell(column, row);
+                    for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                        double d = Math.hypot(qx - x[p], qy - y[p]);
+                        if (found == k && d >= bestDist[k - 1]) continue;
+                        int i = found < k ? found++ : k - 1;
+                        while (i > 0 && bestDist[i - 1] > d) {
+                            best[i] = best[i - 1];
+                            bestDist[i] = bestDist[i - 1];
+                            i--;
+                        }
+                        best[i] = p;
+                        bestDist[i] = d;
+                    }
+                }
+            }
+        }
+        int[] res = new int[found];
+        for (int i = 0; i < found; i++) res[i] = stopIDs[best[i]];
+        return res;
+    }
+
+    /**
+     * Returns the ids of all stops within {@code radius} metres of the given coordinates, closest first.
+     */
+    int[] withinRadius(double lat, double lon, double radius) {
+        double qx = projectX(lon), qy = projectY(lat);
+        int[] hits = new int[16];         // positions, sorted by distance, equal ones in the order they were found
+        double[] hitDist = new double[16];
+        int found = 0;
+        for (int row = Math.max(0, row(qy - radius)); row <= Math.min(rows - 1, row(qy + radius)); row++) {
+            for (int column = Math.max(0, column(qx - radius)); column <= Math.min(columns - 1, column(qx + radius)); column++) {
+                int c = cell(column, row);
+                for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                    double d = Math.hypot(qx - x[p], qy - y[p]);
+                    if (d > radius) continue;
+                    if (found == hits.length) {
+                        hits = Arrays.copyOf(hits, found * 2);
+                        hitDist = Arrays.copyOf(hitDist, found * 2);
+                    }
+                    int i = found++;
+                    while (i > 0 && hitDist[i - 1] > d) {
+                        hits[i] = hits[i - 1];
+                        hitDist[i] = hitDist[i - 1];
+                        i--;
+                    }
+                    hits[i] = p;
+                    hitDist[i] = d;
+                }
+            }
+        }
+        int[] res = new int[found];
+        for (int i = 0; i < found; i++) res[i] = stopIDs[hits[i]];
+        return res;
+    }
+
+    // up to k stops within walking distance, or the single nearest stop if none is that close
+    int[] walkableStops(double lat, double lon, double radius, int k) {
+        int[] stops = withinRadius(lat, lon, radius);
+        return stops.length == 0 ? nearest(lat, lon, 1) : Arrays.copyOf(stops, Math.min(k, stops.length));
+    }
+
+    private double projectX(double lon) {
+        return (lon - originLon) * METRES_PER_DEGREE * cosLat;
+    }
+
+    private double projectY(double lat) {
+        return (lat - originLat) * METRES_PER_DEGREE;
+    }
+
+    private int column(double px) {
+        return (int) Math.max(Math.min((px - minX) / cellSize, columns - 1), Integer.MIN_VALUE / 2);
+    }
+
+    private int row(double py) {
+        return (int) Math.max(Math.min((py - minY) / cellSize, rows - 1), Integer.MIN_VALUE / 2);
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,50 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// trip_id strings numbered in the order they are first seen, so int columns can hold any trip id as it is
+// written in the feed, "0123" or "9000000-WKDY" alike
+class TripIDs {
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    // the number of the trip id, numbering it if it is new
+    int intern(String tripID) {
+        Integer number = numbers.get(tripID);
+        if (number == null) {
+            number = ids.size();
+            ids.add(tripID);
+            numbers.put(tripID, number);
+        }
+        return number;
+    }
+
+    // -1 if the trip id has not been seen
+    int numberOf(String tripID) {
+        return numbers.getOrDefault(tripID, -1);
+    }
+
+    String get(int number) {
+        return ids.get(number);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    // every id followed by a newline, which a trip_id field cannot contain
+    byte[] toBytes() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (String tripID : ids) stringBuilder.append(tripID).append('\n');
+        return stringBuilder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static TripIDs fromBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        String all = new String(bytes, StandardCharsets.UTF_8);
+        TripIDs tripIDs = new TripIDs();
+        for (int from = 0, to; (to = all.indexOf('\n', from)) >= 0; from = to + 1) tripIDs.intern(all.substring(from, to));
+        return tripIDs;
+    }
+}